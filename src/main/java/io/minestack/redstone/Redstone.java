@@ -4,6 +4,8 @@ import com.mongodb.ServerAddress;
 import com.rabbitmq.client.Address;
 import io.minestack.doublechest.DoubleChest;
 import io.minestack.redstone.managers.BungeeManager;
+import io.minestack.redstone.managers.ContainerManager;
+import io.minestack.redstone.managers.RollingManager;
 import io.minestack.redstone.managers.ServerManager;
 import io.minestack.redstone.threads.ProvisionThread;
 import lombok.Getter;
@@ -14,6 +16,10 @@ import net.kencochrane.raven.RavenFactory;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,12 +36,53 @@ public class Redstone {
     @Getter
     private final BungeeManager bungeeManager;
 
+    @Getter
+    private final ContainerManager containerManager;
+
+    @Getter
+    private final RollingManager rollingManager;
+
     @Getter
     private final Raven raven;
 
     public Redstone(String dsn) {
         log.info("Started Redstone - Minestack Controller");
 
+        serverManager = new ServerManager(this);
+        bungeeManager = new BungeeManager(this);
+        containerManager = new ContainerManager();
+        rollingManager = new RollingManager(this);
+
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        boolean started = false;
+        try {
+            //mongo, rabbit and raven don't depend on each other so connect to them at the same time
+            Future<?> mongoFuture = executorService.submit(this::initMongo);
+            Future<?> rabbitFuture = executorService.submit(this::initRabbit);
+            Future<Raven> ravenFuture = executorService.submit(() -> RavenFactory.ravenInstance(dsn));
+
+            //node warm up only needs mongo so it can run while rabbit is still connecting
+            await(mongoFuture, "Mongo Database");
+            containerManager.recover(executorService);
+            rollingManager.recover();
+
+            await(rabbitFuture, "RabbitMQ");
+            raven = await(ravenFuture, "Raven");
+            started = true;
+        } finally {
+            if (started) {
+                executorService.shutdown();
+            } else {
+                //interrupt init tasks and node listings that are still running so they don't keep the jvm alive
+                executorService.shutdownNow();
+            }
+        }
+
+        ProvisionThread provisionThread = new ProvisionThread(this);
+        provisionThread.start();
+    }
+
+    private void initMongo() {
         log.info("Init Mongo Database");
         List<ServerAddress> addresses = new ArrayList<>();
         String mongoAddresses = System.getenv("mongo_addresses");
@@ -48,7 +95,7 @@ public class Redstone {
             try {
                 addresses.add(new ServerAddress(split[0], port));
             } catch (UnknownHostException e) {
-                log.error("Threw a UnknownHostException in Redstone::main, full stack trace follows: ", e);
+                log.error("Threw a UnknownHostException in Redstone::initMongo, full stack trace follows: ", e);
             }
         }
         if (System.getenv("mongo_username") == null) {
@@ -56,7 +103,9 @@ public class Redstone {
         } else {
             DoubleChest.INSTANCE.initMongoDatabase(addresses, System.getenv("mongo_username"), System.getenv("mongo_password"), System.getenv("mongo_database"));
         }
+    }
 
+    private void initRabbit() {
         log.info("Init RabbitMQ");
         List<Address> addressList = new ArrayList<>();
         String rabbitAddresses = System.getenv("rabbit_addresses");
@@ -69,14 +118,15 @@ public class Redstone {
             addressList.add(new Address(split[0], port));
         }
         DoubleChest.INSTANCE.initRabbitMQDatabase(addressList, System.getenv("rabbit_username"), System.getenv("rabbit_password"));
+    }
 
-        raven = RavenFactory.ravenInstance(dsn);
-
-        serverManager = new ServerManager(this);
-        bungeeManager = new BungeeManager(this);
-
-        ProvisionThread provisionThread = new ProvisionThread(this);
-        provisionThread.start();
+    private <T> T await(Future<T> future, String name) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            log.error("Threw a Exception while initializing " + name + ", full stack trace follows: ", e);
+            throw new RuntimeException("Could not initialize " + name, e);
+        }
     }
 
 }
@@ -0,0 +1,131 @@
+package io.minestack.redstone.managers;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.core.DockerClientBuilder;
+import io.minestack.doublechest.DoubleChest;
+import io.minestack.doublechest.model.bungee.Bungee;
+import io.minestack.doublechest.model.network.Network;
+import io.minestack.doublechest.model.node.NetworkNode;
+import io.minestack.doublechest.model.node.Node;
+import io.minestack.doublechest.model.server.Server;
+import lombok.extern.log4j.Log4j2;
+import org.bson.types.ObjectId;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+@Log4j2
+public class ContainerManager {
+
+    //how long a recovered container is kept alive without a heartbeat after the controller starts
+    private static final long RECOVERY_GRACE = 120000;
+
+    private final Set<ObjectId> runningServers = ConcurrentHashMap.newKeySet();
+    private final Set<ObjectId> runningBungees = ConcurrentHashMap.newKeySet();
+    private long recoveredAt = 0;
+
+    /**
+     * Lists the containers on every node in parallel and matches them by id or name to the
+     * server and bungee models so the provision thread knows what is already running.
+     */
+    public void recover(ExecutorService executorService) {
+        log.info("Recovering running containers");
+
+        Map<String, Node> nodes = new HashMap<>();
+        List<Network> networks = DoubleChest.INSTANCE.getMongoDatabase().getNetworkRepository().getModels();
+        for (Network network : networks) {
+            for (NetworkNode networkNode : network.getNodes().values()) {
+                if (networkNode.getNode() != null) {
+                    nodes.putIfAbsent(networkNode.getNode().getName(), networkNode.getNode());
+                }
+            }
+        }
+
+        Map<String, Future<List<Container>>> futures = new HashMap<>();
+        for (Node node : nodes.values()) {
+            futures.put(node.getName(), executorService.submit(() -> {
+                DockerClient dockerClient = DockerClientBuilder.getInstance("http://" + node.getPrivateAddress() + ":4243").build();
+                return dockerClient.listContainersCmd().exec();
+            }));
+        }
+
+        Map<String, List<Container>> containers = new HashMap<>();
+        for (Map.Entry<String, Future<List<Container>>> entry : futures.entrySet()) {
+            try {
+                containers.put(entry.getKey(), entry.getValue().get(30, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                log.error("Threw a InterruptedException in ContainerManager::recover, full stack trace follows: ", e);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while recovering running containers", e);
+            } catch (ExecutionException | TimeoutException e) {
+                log.error("Threw a Exception in ContainerManager::recover while listing node " + entry.getKey() + ", full stack trace follows: ", e);
+                containers.put(entry.getKey(), Collections.emptyList());
+            }
+        }
+
+        for (Network network : networks) {
+            for (Server server : DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().getNetworkServers(network, false)) {
+                if (server.getNode() == null || server.getServerType() == null) {
+                    continue;
+                }
+                Container container = findContainer(containers.get(server.getNode().getName()), server.getContainerId(), server.getServerType().getName() + "." + server.getNumber());
+                if (container != null) {
+                    if (container.getId().equals(server.getContainerId()) == false) {
+                        server.setContainerId(container.getId());
+                        DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().saveModel(server);
+                    }
+                    runningServers.add(server.getId());
+                }
+            }
+
+            for (Bungee bungee : DoubleChest.INSTANCE.getMongoDatabase().getBungeeRepository().getNetworkBungees(network)) {
+                if (bungee.getNode() == null || bungee.getBungeeType() == null || bungee.getPublicAddress() == null) {
+                    continue;
+                }
+                Container container = findContainer(containers.get(bungee.getNode().getName()), bungee.getContainerId(), bungee.getBungeeType().getName() + "." + bungee.getPublicAddress().getPublicAddress());
+                if (container != null) {
+                    if (container.getId().equals(bungee.getContainerId()) == false) {
+                        bungee.setContainerId(container.getId());
+                        DoubleChest.INSTANCE.getMongoDatabase().getBungeeRepository().saveModel(bungee);
+                    }
+                    runningBungees.add(bungee.getId());
+                }
+            }
+        }
+
+        recoveredAt = System.currentTimeMillis();
+        log.info("Recovered " + runningServers.size() + " servers and " + runningBungees.size() + " bungees on " + nodes.size() + " nodes");
+    }
+
+    private Container findContainer(List<Container> containers, String containerId, String name) {
+        if (containers == null) {
+            return null;
+        }
+        for (Container container : containers) {
+            if (container.getStatus() == null || container.getStatus().startsWith("Up") == false) {
+                continue;
+            }
+            if (containerId != null && container.getId().startsWith(containerId)) {
+                return container;
+            }
+            if (container.getNames() != null && Arrays.asList(container.getNames()).contains("/" + name)) {
+                return container;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A server whose container was found running at startup is not timed out until the grace period
+     * has passed, giving it a chance to heartbeat instead of being torn down and recreated.
+     */
+    public boolean isRecovering(Server server) {
+        return runningServers.contains(server.getId()) && System.currentTimeMillis() - recoveredAt < RECOVERY_GRACE;
+    }
+
+    public boolean isRecovering(Bungee bungee) {
+        return runningBungees.contains(bungee.getId()) && System.currentTimeMillis() - recoveredAt < RECOVERY_GRACE;
+    }
+
+}
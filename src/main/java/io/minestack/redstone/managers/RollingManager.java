@@ -0,0 +1,438 @@
+package io.minestack.redstone.managers;
+
+import io.minestack.doublechest.DoubleChest;
+import io.minestack.doublechest.databases.rabbitmq.publishers.ServerCreatePublisher;
+import io.minestack.doublechest.model.network.Network;
+import io.minestack.doublechest.model.node.Node;
+import io.minestack.doublechest.model.pluginhandler.servertype.NetworkServerType;
+import io.minestack.doublechest.model.pluginhandler.servertype.ServerType;
+import io.minestack.doublechest.model.server.Server;
+import io.minestack.redstone.Redstone;
+import io.minestack.redstone.threads.ProvisionThread;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+import org.bson.types.ObjectId;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+@Log4j2
+public class RollingManager {
+
+    //drains and rollouts are kept next to controller.log so they survive a controller restart
+    private static final File STATE_FILE = new File("rollouts.json");
+    private static final File STATE_TEMP_FILE = new File("rollouts.json.tmp");
+
+    private final Redstone redstone;
+
+    @Getter
+    private final List<Rollout> rollouts = new CopyOnWriteArrayList<>();
+
+    //network name to the names of the nodes drained for that network
+    private final Map<String, Set<String>> drainedNodes = new ConcurrentHashMap<>();
+
+    public RollingManager(Redstone redstone) {
+        this.redstone = redstone;
+    }
+
+    public boolean rollServerType(Network network, NetworkServerType networkServerType, int maxConcurrency, int maxUnavailable) {
+        String name = networkServerType.getServerType().getName();
+        if (networkServerType.isManualStart() == true) {
+            log.error("Tried to roll " + name + " for network " + network.getName() + " which is manually started and would not be recreated");
+            return false;
+        }
+        if (getRollout(network.getName(), name, false) != null) {
+            log.error("Tried to roll " + name + " for network " + network.getName() + " when it is already being rolled");
+            return false;
+        }
+
+        Set<ObjectId> servers = DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().getNetworkServerTypeServers(network, networkServerType.getServerType(), false)
+                .stream()
+                .map(Server::getId)
+                .collect(Collectors.toSet());
+
+        log.info("Starting rolling restart of " + name + " for network " + network.getName() + " replacing " + servers.size() + " servers");
+        Rollout rollout = new Rollout(name, network.getName(), name, servers, servers, Math.max(1, maxConcurrency), Math.max(0, maxUnavailable), 0);
+        rollout.getPendingTypes().add(name);
+        rollouts.add(rollout);
+        saveState();
+        return true;
+    }
+
+    public boolean drainNode(Network network, Node node, int maxConcurrency, int maxUnavailable) {
+        if (getRollout(network.getName(), node.getName(), true) != null) {
+            log.error("Tried to drain node " + node.getName() + " for network " + network.getName() + " when it is already being drained");
+            return false;
+        }
+        drainedNodes.computeIfAbsent(network.getName(), k -> ConcurrentHashMap.newKeySet()).add(node.getName());
+
+        List<Server> existing = DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().getNetworkServers(network, false);
+        List<Server> servers = existing.stream()
+                .filter(server -> server.getNode() != null && server.getNode().getName().equals(node.getName()))
+                .collect(Collectors.toList());
+
+        log.info("Draining node " + node.getName() + " for network " + network.getName() + " replacing " + servers.size() + " servers");
+        Rollout rollout = new Rollout(node.getName(), network.getName(), null, servers.stream().map(Server::getId).collect(Collectors.toSet()),
+                existing.stream().map(Server::getId).collect(Collectors.toSet()), Math.max(1, maxConcurrency), Math.max(0, maxUnavailable), 0);
+        servers.stream().filter(server -> server.getServerType() != null).forEach(server -> rollout.getPendingTypes().add(server.getServerType().getName()));
+        rollouts.add(rollout);
+        saveState();
+        return true;
+    }
+
+    /**
+     * Lets servers of the network be placed on the node again and stops the drain if it is still running.
+     */
+    public boolean undrainNode(String network, String nodeName) {
+        Rollout rollout = getRollout(network, nodeName, true);
+        if (rollout != null) {
+            log.info("Stopped draining node " + nodeName + " for network " + network);
+            rollouts.remove(rollout);
+        }
+
+        Set<String> nodes = drainedNodes.get(network);
+        boolean drained = nodes != null && nodes.remove(nodeName);
+        if (drained) {
+            log.info("Node " + nodeName + " is no longer drained for network " + network);
+        }
+
+        if (rollout != null || drained) {
+            saveState();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops a rollout without touching the servers it has already replaced. A cancelled drain leaves the
+     * node drained until it is undrained.
+     */
+    public boolean cancelRollout(String network, String name, boolean node) {
+        Rollout rollout = getRollout(network, name, node);
+        if (rollout == null) {
+            log.error("Tried to cancel rolling " + name + " for network " + network + " when it is not being rolled");
+            return false;
+        }
+        log.info("Cancelled rolling " + name + " for network " + network + ", replaced " + rollout.getReplaced() + "/" + rollout.getServers().size() + " servers");
+        rollouts.remove(rollout);
+        saveState();
+        return true;
+    }
+
+    public boolean isDrained(Network network, Node node) {
+        Set<String> nodes = drainedNodes.get(network.getName());
+        return nodes != null && nodes.contains(node.getName());
+    }
+
+    private Rollout getRollout(String network, String name, boolean node) {
+        for (Rollout rollout : rollouts) {
+            if (rollout.getNetwork().equals(network) && rollout.getName().equals(name) && (rollout.getServerType() == null) == node) {
+                return rollout;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The number of servers of a type that may be created above its amount while it is being rolled.
+     */
+    public int getSurge(Network network, ServerType serverType) {
+        int surge = 0;
+        for (Rollout rollout : rollouts) {
+            if (rollout.getNetwork().equals(network.getName()) && rollout.getPendingTypes().contains(serverType.getName())) {
+                surge += rollout.getMaxConcurrency();
+            }
+        }
+        return surge;
+    }
+
+    /**
+     * Moves every rollout on the network forward by one step. Old servers that already have a replacement
+     * are removed while enough servers are up to stay within max unavailable, then replacements are surged
+     * so starting servers never exceed max concurrency and a type never exceeds its amount plus its surge.
+     */
+    public void tick(Network network) {
+        boolean changed = false;
+
+        for (Rollout rollout : rollouts) {
+            if (rollout.getNetwork().equals(network.getName()) == false) {
+                continue;
+            }
+            int replaced = rollout.getReplaced();
+
+            List<Server> remaining = DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().getNetworkServers(network, false)
+                    .stream()
+                    .filter(server -> rollout.getServers().contains(server.getId()))
+                    .collect(Collectors.toList());
+
+            if (remaining.isEmpty()) {
+                finish(network, rollout);
+                changed = true;
+                continue;
+            }
+
+            //updated in place as ServerManager reads it from the build worker thread
+            Set<String> pendingTypes = remaining.stream()
+                    .filter(server -> server.getServerType() != null)
+                    .map(server -> server.getServerType().getName())
+                    .collect(Collectors.toSet());
+            rollout.getPendingTypes().retainAll(pendingTypes);
+            rollout.getPendingTypes().addAll(pendingTypes);
+
+            //servers that are starting or have been removed without a replacement both count against max concurrency
+            int inFlight = 0;
+            Map<NetworkServerType, List<Server>> typeServers = new HashMap<>();
+            for (NetworkServerType networkServerType : network.getServerTypes().values()) {
+                if (networkServerType.isManualStart() == true || rollout.getPendingTypes().contains(networkServerType.getServerType().getName()) == false) {
+                    continue;
+                }
+                List<Server> servers = DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().getNetworkServerTypeServers(network, networkServerType.getServerType(), false);
+                typeServers.put(networkServerType, servers);
+
+                for (Server server : servers) {
+                    if (rollout.getExisting().contains(server.getId()) == false && isReady(server) == false) {
+                        inFlight++;
+                    }
+                }
+                inFlight += Math.max(0, networkServerType.getAmount() - servers.size());
+            }
+
+            if (rollout.getServerType() != null && typeServers.isEmpty()) {
+                log.warn("Stopped rolling " + rollout.getName() + " for network " + rollout.getNetwork() + ", it is no longer an automatically started server type");
+                rollouts.remove(rollout);
+                changed = true;
+                continue;
+            }
+
+            Set<ObjectId> handled = new HashSet<>();
+            for (Map.Entry<NetworkServerType, List<Server>> entry : typeServers.entrySet()) {
+                NetworkServerType networkServerType = entry.getKey();
+                int amount = networkServerType.getAmount();
+
+                List<Server> oldServers = new ArrayList<>();
+                int otherServers = 0;
+                int newReady = 0;
+                for (Server server : entry.getValue()) {
+                    if (rollout.getServers().contains(server.getId())) {
+                        oldServers.add(server);
+                        handled.add(server.getId());
+                    } else if (rollout.getExisting().contains(server.getId())) {
+                        otherServers++;
+                    } else if (isReady(server)) {
+                        newReady++;
+                    }
+                }
+                if (oldServers.isEmpty()) {
+                    continue;
+                }
+                int total = entry.getValue().size();
+
+                //only remove old servers that already have a replacement
+                int available = oldServers.size() + otherServers + newReady;
+                Iterator<Server> iterator = oldServers.iterator();
+                while (iterator.hasNext() && total > amount && available - 1 >= amount - rollout.getMaxUnavailable()) {
+                    if (removeServer(rollout, iterator.next()) == false) {
+                        break;
+                    }
+                    iterator.remove();
+                    total--;
+                    available--;
+                }
+
+                //surge a replacement for every old server that doesn't have one yet, staying within the surge ServerManager allows
+                while (inFlight < rollout.getMaxConcurrency() && oldServers.size() > total - amount && total - amount < rollout.getMaxConcurrency()) {
+                    try {
+                        new ServerCreatePublisher().createServer(networkServerType.getServerType(), network);
+                    } catch (IOException e) {
+                        log.error("Threw a Exception in RollingManager::tick, full stack trace follows: ", e);
+                        break;
+                    }
+                    if (total >= amount) {
+                        inFlight++;
+                    }
+                    total++;
+                }
+            }
+
+            //manually started servers and servers of types no longer on the network are never recreated
+            //so on a drained node they are removed without a replacement, still throttled by max concurrency
+            if (rollout.getServerType() == null) {
+                for (Server server : remaining) {
+                    if (handled.contains(server.getId())) {
+                        continue;
+                    }
+                    if (inFlight >= rollout.getMaxConcurrency()) {
+                        log.info("Waiting to remove " + (server.getServerType() == null ? server.getId() : server.getServerType().getName() + " " + server.getNumber()) + " from node " + rollout.getName() + ", it will not be recreated");
+                        continue;
+                    }
+                    log.info("Removing " + (server.getServerType() == null ? server.getId() : server.getServerType().getName() + " " + server.getNumber()) + " from drained node " + rollout.getName() + " without a replacement");
+                    if (removeServer(rollout, server)) {
+                        inFlight++;
+                    }
+                }
+            }
+
+            if (rollout.getReplaced() != replaced) {
+                changed = true;
+            }
+            log.info("Rolling " + rollout.getName() + " for network " + rollout.getNetwork() + ": " + rollout.getReplaced() + "/" + rollout.getServers().size() + " replaced, " + inFlight + " in flight");
+        }
+
+        if (changed) {
+            saveState();
+        }
+    }
+
+    private boolean removeServer(Rollout rollout, Server server) {
+        try {
+            log.info("Rolling out Server " + (server.getServerType() == null ? server.getId() : server.getServerType().getName() + " " + server.getNumber()));
+            if (server.getNode() != null) {
+                redstone.getServerManager().removeContainer(server);
+            }
+            DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().removeModel(server);
+            rollout.setReplaced(rollout.getReplaced() + 1);
+            return true;
+        } catch (Exception e) {
+            log.error("Threw a Exception in RollingManager::removeServer, full stack trace follows: ", e);
+            return false;
+        }
+    }
+
+    private void finish(Network network, Rollout rollout) {
+        log.info("Finished rolling " + rollout.getName() + " for network " + rollout.getNetwork() + ", replaced " + rollout.getReplaced() + " servers");
+        if (rollout.getServerType() == null) {
+            //bungees are bound to the node's public addresses so they are never moved off a drained node
+            long bungees = DoubleChest.INSTANCE.getMongoDatabase().getBungeeRepository().getNetworkBungees(network)
+                    .stream()
+                    .filter(bungee -> bungee.getNode() != null && bungee.getNode().getName().equals(rollout.getName()))
+                    .count();
+            if (bungees > 0) {
+                log.warn("Node " + rollout.getName() + " has no servers left for network " + network.getName() + " but still runs " + bungees + " bungees");
+            } else {
+                log.info("Node " + rollout.getName() + " has nothing left running for network " + network.getName());
+            }
+        }
+        rollouts.remove(rollout);
+    }
+
+    private boolean isReady(Server server) {
+        //created servers are given an updated_at in the future until they heartbeat for the first time
+        if (server.getContainerId() == null || server.getUpdated_at() == null) {
+            return false;
+        }
+        long since = System.currentTimeMillis() - server.getUpdated_at().getTime();
+        return since >= 0 && since < ProvisionThread.HEARTBEAT_TIMEOUT;
+    }
+
+    /**
+     * Restores the drained nodes and unfinished rollouts from before the controller was restarted, so
+     * drained nodes don't get placements again and surged servers are cleaned up by the resumed rollout.
+     */
+    public void recover() {
+        if (STATE_FILE.exists() == false) {
+            return;
+        }
+        try {
+            JSONObject state = new JSONObject(new String(Files.readAllBytes(STATE_FILE.toPath()), StandardCharsets.UTF_8));
+
+            JSONObject drained = state.getJSONObject("drained");
+            for (String network : JSONObject.getNames(drained) == null ? new String[0] : JSONObject.getNames(drained)) {
+                JSONArray nodes = drained.getJSONArray(network);
+                for (int i = 0; i < nodes.length(); i++) {
+                    drainedNodes.computeIfAbsent(network, k -> ConcurrentHashMap.newKeySet()).add(nodes.getString(i));
+                    log.warn("Node " + nodes.getString(i) + " is still drained for network " + network + ", no servers will be placed on it");
+                }
+            }
+
+            JSONArray rolloutArray = state.getJSONArray("rollouts");
+            for (int i = 0; i < rolloutArray.length(); i++) {
+                JSONObject object = rolloutArray.getJSONObject(i);
+                Rollout rollout = new Rollout(object.getString("name"), object.getString("network"), object.optString("serverType", null),
+                        toIds(object.getJSONArray("servers")), toIds(object.getJSONArray("existing")),
+                        object.getInt("maxConcurrency"), object.getInt("maxUnavailable"), object.getInt("replaced"));
+                if (rollout.getServerType() != null) {
+                    rollout.getPendingTypes().add(rollout.getServerType());
+                }
+                rollouts.add(rollout);
+                log.warn("Resuming rolling " + rollout.getName() + " for network " + rollout.getNetwork());
+            }
+        } catch (Exception e) {
+            log.error("Threw a Exception in RollingManager::recover, drained nodes and rollouts have been lost and drained nodes will get servers placed on them again, full stack trace follows: ", e);
+        }
+    }
+
+    private synchronized void saveState() {
+        JSONObject drained = new JSONObject();
+        for (Map.Entry<String, Set<String>> entry : drainedNodes.entrySet()) {
+            if (entry.getValue().isEmpty() == false) {
+                drained.put(entry.getKey(), new JSONArray(entry.getValue()));
+            }
+        }
+
+        JSONArray rolloutArray = new JSONArray();
+        for (Rollout rollout : rollouts) {
+            JSONObject object = new JSONObject();
+            object.put("name", rollout.getName());
+            object.put("network", rollout.getNetwork());
+            if (rollout.getServerType() != null) {
+                object.put("serverType", rollout.getServerType());
+            }
+            object.put("servers", new JSONArray(rollout.getServers().stream().map(ObjectId::toString).collect(Collectors.toList())));
+            object.put("existing", new JSONArray(rollout.getExisting().stream().map(ObjectId::toString).collect(Collectors.toList())));
+            object.put("maxConcurrency", rollout.getMaxConcurrency());
+            object.put("maxUnavailable", rollout.getMaxUnavailable());
+            object.put("replaced", rollout.getReplaced());
+            rolloutArray.put(object);
+        }
+
+        JSONObject state = new JSONObject();
+        state.put("drained", drained);
+        state.put("rollouts", rolloutArray);
+
+        //write to a temp file first so a crash mid write never leaves a truncated state file behind
+        try {
+            Files.write(STATE_TEMP_FILE.toPath(), state.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(STATE_TEMP_FILE.toPath(), STATE_FILE.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Threw a Exception in RollingManager::saveState, full stack trace follows: ", e);
+        }
+    }
+
+    private Set<ObjectId> toIds(JSONArray array) {
+        Set<ObjectId> ids = new HashSet<>();
+        for (int i = 0; i < array.length(); i++) {
+            ids.add(new ObjectId(array.getString(i)));
+        }
+        return ids;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Rollout {
+
+        private final String name;
+        private final String network;
+        private final String serverType;
+        private final Set<ObjectId> servers;
+        private final Set<ObjectId> existing;
+        private final int maxConcurrency;
+        private final int maxUnavailable;
+        @Setter
+        private volatile int replaced;
+
+        //names of the server types that still have old servers left to replace
+        private final Set<String> pendingTypes = ConcurrentHashMap.newKeySet();
+    }
+
+}
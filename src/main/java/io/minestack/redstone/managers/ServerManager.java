@@ -47,7 +47,7 @@ public class ServerManager {
             log.error("Tried to create " + server.getServerType().getName() + " on network " + server.getNetwork().getName() + " when it has not been added.");
             return false;
         }
-        if (DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().getNetworkServerTypeServers(server.getNetwork(), server.getServerType(), true).size() > server.getNetwork().getServerTypes().get(server.getServerType().getId()).getAmount()) {
+        if (DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().getNetworkServerTypeServers(server.getNetwork(), server.getServerType(), true).size() > server.getNetwork().getServerTypes().get(server.getServerType().getId()).getAmount() + redstone.getRollingManager().getSurge(server.getNetwork(), server.getServerType())) {
             log.error("Tried to create more servers "+server.getServerType().getName()+" then provisioned on network " + server.getNetwork().getName());
             return false;
         }
@@ -68,7 +68,7 @@ public class ServerManager {
                 NetworkNode next = iterator.next();
 
                 if (next.getNode().canFitServer(server.getServerType())) {
-                    if (filter.test(next.getNode()))
+                    if (filter.test(next.getNode()) || redstone.getRollingManager().isDrained(server.getNetwork(), next.getNode()))
                         continue;
 
                     if (node == null) {
@@ -31,9 +31,16 @@ import java.util.List;
 @Log4j2
 public class ProvisionThread extends Thread {
 
+    //servers and bungees that haven't heartbeated in this long are considered dead
+    public static final long HEARTBEAT_TIMEOUT = 60000;
+
+    //queue rolling restarts, drains, undrains and cancels are requested on
+    public static final String ROLLING_RESTART_QUEUE = "ROLLING_RESTART";
+
     private final Redstone redstone;
     private WorkerQueue serverWorkerQueue;
     private WorkerQueue bungeeWorkerQueue;
+    private WorkerQueue rollingWorkerQueue;
 
     public ProvisionThread(Redstone redstone) {
         this.redstone = redstone;
@@ -111,6 +118,73 @@ public class ProvisionThread extends Thread {
         } catch (IOException e) {
             log.error("Threw a Exception in ProvisionThread, full stack trace follows: ", e);
         }
+
+        try {
+            rollingWorkerQueue = new WorkerQueue(DoubleChest.INSTANCE.getRabbitMQDatabase(), ROLLING_RESTART_QUEUE) {
+
+                @Override
+                public void messageDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties basicProperties, byte[] bytes) throws IOException {
+                    JSONObject jsonObject = new JSONObject(new String(bytes));
+
+                    if (jsonObject.optBoolean("undrain", false) || jsonObject.optBoolean("cancel", false)) {
+                        boolean success;
+                        if (jsonObject.optBoolean("undrain", false)) {
+                            success = redstone.getRollingManager().undrainNode(jsonObject.getString("network"), jsonObject.getString("node"));
+                        } else if (jsonObject.has("serverType")) {
+                            success = redstone.getRollingManager().cancelRollout(jsonObject.getString("network"), jsonObject.getString("serverType"), false);
+                        } else {
+                            success = redstone.getRollingManager().cancelRollout(jsonObject.getString("network"), jsonObject.getString("node"), true);
+                        }
+
+                        if (success == true) {
+                            getChannel().basicAck(envelope.getDeliveryTag(), false);
+                        } else {
+                            getChannel().basicNack(envelope.getDeliveryTag(), false, false);
+                        }
+                        return;
+                    }
+
+                    Network network = null;
+                    for (Network model : DoubleChest.INSTANCE.getMongoDatabase().getNetworkRepository().getModels()) {
+                        if (model.getName().equals(jsonObject.getString("network"))) {
+                            network = model;
+                        }
+                    }
+                    if (network == null) {
+                        log.error("Tried to roll network " + jsonObject.getString("network") + " which does not exist");
+                        getChannel().basicNack(envelope.getDeliveryTag(), false, false);
+                        return;
+                    }
+
+                    int maxConcurrency = jsonObject.optInt("maxConcurrency", 1);
+                    int maxUnavailable = jsonObject.optInt("maxUnavailable", 0);
+                    boolean success = false;
+
+                    if (jsonObject.has("serverType")) {
+                        for (NetworkServerType networkServerType : network.getServerTypes().values()) {
+                            if (networkServerType.getServerType().getName().equals(jsonObject.getString("serverType"))) {
+                                success = redstone.getRollingManager().rollServerType(network, networkServerType, maxConcurrency, maxUnavailable);
+                            }
+                        }
+                    } else if (jsonObject.has("node")) {
+                        for (NetworkNode networkNode : network.getNodes().values()) {
+                            if (networkNode.getNode() != null && networkNode.getNode().getName().equals(jsonObject.getString("node"))) {
+                                success = redstone.getRollingManager().drainNode(network, networkNode.getNode(), maxConcurrency, maxUnavailable);
+                            }
+                        }
+                    }
+
+                    if (success == true) {
+                        getChannel().basicAck(envelope.getDeliveryTag(), false);
+                    } else {
+                        log.error("Could not start rolling for network " + network.getName());
+                        getChannel().basicNack(envelope.getDeliveryTag(), false, false);
+                    }
+                }
+            };
+        } catch (IOException e) {
+            log.error("Threw a Exception in ProvisionThread, full stack trace follows: ", e);
+        }
     }
 
     public void run() {
@@ -139,7 +213,7 @@ public class ProvisionThread extends Thread {
                     if (oldBungee.getNode() != null && oldBungee.getPublicAddress() != null) {
                         Bungee bungee = DoubleChest.INSTANCE.getMongoDatabase().getBungeeRepository().getNetworkNodeAddressBungee(network, oldBungee.getNode(), oldBungee.getPublicAddress());
                         if (bungee != null) {
-                            if (System.currentTimeMillis() - bungee.getUpdated_at().getTime() > 60000) {
+                            if (System.currentTimeMillis() - bungee.getUpdated_at().getTime() > HEARTBEAT_TIMEOUT && redstone.getContainerManager().isRecovering(bungee) == false) {
                                 //bungee hasn't updated in 30 seconds. probably dead
                                 try {
                                     if (bungee.getNode() != null) {
@@ -191,7 +265,7 @@ public class ProvisionThread extends Thread {
                     if (oldServer.getServerType() != null) {
                         Server server = DoubleChest.INSTANCE.getMongoDatabase().getServerRepository().getNetworkServerTypeServerNumber(network, oldServer.getServerType(), oldServer.getNumber());
                         if (server != null) {
-                            if (System.currentTimeMillis() - server.getUpdated_at().getTime() > 60000) {
+                            if (System.currentTimeMillis() - server.getUpdated_at().getTime() > HEARTBEAT_TIMEOUT && redstone.getContainerManager().isRecovering(server) == false) {
                                 //server hasn't updated in 30 seconds. probably dead
                                 try {
                                     if (server.getNode() != null) {
@@ -237,6 +311,8 @@ public class ProvisionThread extends Thread {
                         }
                     }
                 }
+
+                redstone.getRollingManager().tick(network);
             }
 
             try {
@@ -245,6 +321,7 @@ public class ProvisionThread extends Thread {
                 log.info("Stopping Provision Thread");
                 serverWorkerQueue.stopWorking();
                 bungeeWorkerQueue.stopWorking();
+                rollingWorkerQueue.stopWorking();
                 break;
             }
         }